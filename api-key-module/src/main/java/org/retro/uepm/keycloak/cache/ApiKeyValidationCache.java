@@ -0,0 +1,122 @@
+package org.retro.uepm.keycloak.cache;
+
+import org.retro.uepm.keycloak.credentials.ApiKeyCredentialsData;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Node-local cache of parsed API key credential metadata, keyed by credential id.
+ * <p>
+ * The cache only holds the non-secret part of a credential (hash algorithm, iterations, expiration and the owning
+ * user), so a hit lets the validation path skip re-parsing the stored JSON and reject expired keys early. It is never
+ * authoritative on its own: the stored credential is still read on every validation, and an entry whose credential is
+ * gone is evicted at that point. This keeps nodes that did not perform a revocation correct without any cluster
+ * messaging.
+ * <p>
+ * Entries expire after a fixed time-to-live, checked on read. The map is lock-free so the validation path never
+ * contends on it. The capacity is enforced approximately on insert: expired entries are purged first, and if the cache
+ * is still full, arbitrary entries are evicted, so keys that are seen once and never again cannot pin the cache.
+ */
+public class ApiKeyValidationCache {
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final long ttlMillis;
+  private final int maxEntries;
+
+  /**
+   * Creates a new cache.
+   *
+   * @param ttl        how long an entry stays valid after it was loaded
+   * @param maxEntries the maximum number of entries held at once
+   */
+  public ApiKeyValidationCache(Duration ttl, int maxEntries) {
+    this.ttlMillis = ttl.toMillis();
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Looks up the cached metadata for a credential.
+   *
+   * @param keyId the id of the API key credential
+   * @return the cached entry, or an empty {@code Optional} if there is none or it has outlived its time-to-live
+   */
+  public Optional<Entry> get(String keyId) {
+    var entry = entries.get(keyId);
+    if (entry == null) {
+      return Optional.empty();
+    }
+
+    if (isExpired(entry, System.currentTimeMillis())) {
+      entries.remove(keyId, entry);
+      return Optional.empty();
+    }
+
+    return Optional.of(entry);
+  }
+
+  /**
+   * Stores the metadata for a credential, making room first if the cache is full.
+   *
+   * @param keyId          the id of the API key credential
+   * @param userId         the id of the user owning the credential
+   * @param credentialData the parsed credential data
+   */
+  public void put(String keyId, String userId, ApiKeyCredentialsData credentialData) {
+    var now = System.currentTimeMillis();
+    if (entries.size() >= maxEntries && !entries.containsKey(keyId)) {
+      entries.values().removeIf(e -> isExpired(e, now));
+      // Evict down to 90% of capacity so a full cache is not rescanned on every insert.
+      var target = maxEntries - Math.max(1, maxEntries / 10);
+      var iterator = entries.keySet().iterator();
+      while (entries.size() > target && iterator.hasNext()) {
+        iterator.next();
+        iterator.remove();
+      }
+    }
+
+    entries.put(keyId, new Entry(userId, credentialData, now));
+  }
+
+  /**
+   * Removes a single credential from the cache.
+   *
+   * @param keyId the id of the API key credential
+   */
+  public void invalidate(String keyId) {
+    entries.remove(keyId);
+  }
+
+  /**
+   * Removes the given credentials from the cache.
+   *
+   * @param keyIds the ids of the API key credentials
+   */
+  public void invalidateAll(Collection<String> keyIds) {
+    keyIds.forEach(entries::remove);
+  }
+
+  /**
+   * Removes all entries from the cache.
+   */
+  public void clear() {
+    entries.clear();
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    return now - entry.loadedAt() > ttlMillis;
+  }
+
+  /**
+   * A cached credential.
+   *
+   * @param userId         the id of the user owning the credential
+   * @param credentialData the parsed credential data
+   * @param loadedAt       the epoch millisecond timestamp at which the entry was stored
+   */
+  public record Entry(String userId, ApiKeyCredentialsData credentialData, long loadedAt) {
+  }
+}
@@ -0,0 +1,27 @@
+package org.retro.uepm.keycloak.model;
+
+/**
+ * The ApiKeyRevocationRequest record describes which API keys of the current realm should be revoked in bulk.
+ * <p>
+ * All criteria that are set are combined, so a request with a username and an issue window only revokes the keys of
+ * that user that were issued within the window. A request without any criteria is rejected unless
+ * {@code allInRealm} is set, which revokes every API key in the realm.
+ *
+ * @param username      The name of the user whose keys should be revoked.
+ * @param issuedAfter   The lower bound (inclusive) of the issue datetime in ISO-8601 format.
+ * @param issuedBefore  The upper bound (exclusive) of the issue datetime in ISO-8601 format.
+ * @param expiresAfter  The lower bound (inclusive) of the expiration datetime in ISO-8601 format.
+ * @param expiresBefore The upper bound (exclusive) of the expiration datetime in ISO-8601 format.
+ * @param allInRealm    Whether to revoke every key in the realm when no other criteria are given.
+ */
+public record ApiKeyRevocationRequest(String username, String issuedAfter, String issuedBefore,
+                                      String expiresAfter, String expiresBefore, boolean allInRealm) {
+
+  /**
+   * @return true if at least one narrowing criterion is set
+   */
+  public boolean hasCriteria() {
+    return username != null || issuedAfter != null || issuedBefore != null
+        || expiresAfter != null || expiresBefore != null;
+  }
+}
@@ -0,0 +1,75 @@
+package org.retro.uepm.keycloak.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The ApiKeyRevocationStatus record is a point-in-time snapshot of a bulk revocation job.
+ *
+ * @param id         The identifier of the job.
+ * @param realmId    The id of the realm whose keys the job revokes.
+ * @param state      The current state of the job.
+ * @param scanned    The number of candidate credentials examined so far.
+ * @param revoked    The number of credentials deleted so far.
+ * @param batches    The number of batches committed so far.
+ * @param startedAt  The datetime at which the job was submitted.
+ * @param finishedAt The datetime at which the job completed or failed, or null while it is still running.
+ * @param error      A generic failure message if the job failed, otherwise null; details are only logged.
+ */
+public record ApiKeyRevocationStatus(String id, String realmId, State state, long scanned, long revoked, long batches,
+                                     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSZ", timezone = "UTC")
+                                     OffsetDateTime startedAt,
+                                     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSZ", timezone = "UTC")
+                                     OffsetDateTime finishedAt,
+                                     String error) {
+
+  /**
+   * Converts this status into string notes, so it can be kept in Keycloak's cluster-wide single-use object store.
+   *
+   * @return the status as a map of string notes
+   */
+  public Map<String, String> toNotes() {
+    var notes = new HashMap<String, String>();
+    notes.put("id", id);
+    notes.put("realmId", realmId);
+    notes.put("state", state.name());
+    notes.put("scanned", Long.toString(scanned));
+    notes.put("revoked", Long.toString(revoked));
+    notes.put("batches", Long.toString(batches));
+    notes.put("startedAt", startedAt.toString());
+    if (finishedAt != null) {
+      notes.put("finishedAt", finishedAt.toString());
+    }
+    if (error != null) {
+      notes.put("error", error);
+    }
+    return notes;
+  }
+
+  /**
+   * Restores a status from the notes produced by {@link #toNotes()}.
+   *
+   * @param notes the status as a map of string notes
+   * @return the restored status
+   */
+  public static ApiKeyRevocationStatus fromNotes(Map<String, String> notes) {
+    var finishedAt = notes.get("finishedAt");
+    return new ApiKeyRevocationStatus(notes.get("id"), notes.get("realmId"), State.valueOf(notes.get("state")),
+        Long.parseLong(notes.get("scanned")), Long.parseLong(notes.get("revoked")),
+        Long.parseLong(notes.get("batches")), OffsetDateTime.parse(notes.get("startedAt")),
+        finishedAt != null ? OffsetDateTime.parse(finishedAt) : null, notes.get("error"));
+  }
+
+  /**
+   * The lifecycle states of a revocation job.
+   */
+  public enum State {
+    PENDING,
+    RUNNING,
+    COMPLETED,
+    FAILED
+  }
+}
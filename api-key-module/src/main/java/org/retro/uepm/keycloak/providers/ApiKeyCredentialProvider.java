@@ -7,6 +7,7 @@ import org.keycloak.common.util.Time;
 import org.keycloak.credential.*;
 import org.keycloak.credential.hash.PasswordHashProvider;
 import org.keycloak.models.*;
+import org.retro.uepm.keycloak.cache.ApiKeyValidationCache;
 import org.retro.uepm.keycloak.credentials.ApiKeyCredentialModel;
 import org.retro.uepm.keycloak.credentials.CreatedApiKey;
 
@@ -31,6 +32,7 @@ public class ApiKeyCredentialProvider implements CredentialProvider<ApiKeyCreden
   private static final Logger logger = getLogger(ApiKeyCredentialProvider.class);
 
   private final KeycloakSession session;
+  private final ApiKeyValidationCache cache;
   private final SecretGenerator secretGenerator = SecretGenerator.getInstance();
 
   @Override
@@ -75,7 +77,7 @@ public class ApiKeyCredentialProvider implements CredentialProvider<ApiKeyCreden
     }
   }
 
-  private byte[] combineKey(UUID userId, UUID keyId, byte[] privateBytes) {
+  static byte[] combineKey(UUID userId, UUID keyId, byte[] privateBytes) {
     var buffer = ByteBuffer.allocate(32 + privateBytes.length);
     buffer.putLong(userId.getMostSignificantBits());
     buffer.putLong(userId.getLeastSignificantBits());
@@ -92,6 +94,7 @@ public class ApiKeyCredentialProvider implements CredentialProvider<ApiKeyCreden
 
   @Override
   public boolean deleteCredential(RealmModel realmModel, UserModel userModel, String credentialId) {
+    cache.invalidate(credentialId);
     return userModel.credentialManager().removeStoredCredentialById(credentialId);
   }
 
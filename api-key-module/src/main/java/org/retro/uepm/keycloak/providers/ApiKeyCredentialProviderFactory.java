@@ -1,9 +1,27 @@
 package org.retro.uepm.keycloak.providers;
 
 import com.google.auto.service.AutoService;
+import org.jboss.logging.Logger;
+import org.keycloak.Config;
 import org.keycloak.credential.CredentialProvider;
 import org.keycloak.credential.CredentialProviderFactory;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.PostMigrationEvent;
+import org.keycloak.provider.ProviderEventListener;
+import org.retro.uepm.keycloak.cache.ApiKeyValidationCache;
+import org.retro.uepm.keycloak.model.ApiKeyRevocationStatus;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.jboss.logging.Logger.getLogger;
 
 /**
  * The {@code ApiKeyCredentialProviderFactory} class serves as a factory
@@ -23,14 +41,167 @@ import org.keycloak.models.KeycloakSession;
  * This factory is automatically registered via the {@code AutoService}
  * annotation, enabling seamless discovery and integration in the
  * Keycloak environment.
+ * <p>
+ * The factory also owns the node-local {@link ApiKeyValidationCache} shared by all sessions, and optionally runs an
+ * {@link ApiKeyWarmup} in the background once Keycloak has finished its database migration and imports, signalled by
+ * {@link PostMigrationEvent}. Until the warm-up has finished or its time budget has elapsed, {@link #isReady()}
+ * reports {@code false}; the budget is enforced on readiness itself, so a warm-up stuck on a slow database does not
+ * hold the node back. It is configured through the SPI options
+ * {@code validation-cache-ttl-seconds}, {@code validation-cache-max-entries}, {@code warmup-enabled},
+ * {@code warmup-budget-seconds}, {@code warmup-max-keys}, {@code warmup-iterations},
+ * {@code revocation-batch-size} and {@code revocation-queue-size}, e.g.
+ * {@code --spi-credential-api-key-warmup-enabled=true}.
+ * <p>
+ * Bulk revocations are run one at a time as {@link ApiKeyRevocationJob}s on a dedicated background thread, with at
+ * most {@code revocation-queue-size} jobs waiting behind the running one. Their progress is published cluster-wide,
+ * so it can be polled through any node.
  */
 @AutoService(CredentialProviderFactory.class)
 public class ApiKeyCredentialProviderFactory implements CredentialProviderFactory<ApiKeyCredentialProvider> {
   public static final String PROVIDER_ID = "api-key";
 
+  private static final Logger logger = getLogger(ApiKeyCredentialProviderFactory.class);
+
+  private ApiKeyValidationCache cache;
+  private boolean warmupEnabled;
+  private Duration warmupBudget;
+  private int warmupMaxKeys;
+  private int warmupIterations;
+  private int revocationBatchSize;
+  private int revocationQueueSize;
+  private volatile boolean warmupDone;
+  private volatile Long warmupDeadline;
+  private ProviderEventListener warmupListener;
+  private KeycloakSessionFactory sessionFactory;
+  private ExecutorService revocationExecutor;
+
+  /**
+   * Looks up the factory registered for the given session.
+   *
+   * @param session the current Keycloak session
+   * @return the registered {@code ApiKeyCredentialProviderFactory}
+   */
+  public static ApiKeyCredentialProviderFactory getFactory(KeycloakSession session) {
+    return (ApiKeyCredentialProviderFactory) session.getKeycloakSessionFactory()
+        .getProviderFactory(CredentialProvider.class, PROVIDER_ID);
+  }
+
+  static ApiKeyValidationCache getValidationCache(KeycloakSession session) {
+    return getFactory(session).cache;
+  }
+
   @Override
   public ApiKeyCredentialProvider create(KeycloakSession keycloakSession) {
-    return new ApiKeyCredentialProvider(keycloakSession);
+    return new ApiKeyCredentialProvider(keycloakSession, cache);
+  }
+
+  @Override
+  public void init(Config.Scope config) {
+    cache = new ApiKeyValidationCache(Duration.ofSeconds(config.getLong("validation-cache-ttl-seconds", 300L)),
+        config.getInt("validation-cache-max-entries", 10000));
+    warmupEnabled = config.getBoolean("warmup-enabled", false);
+    warmupBudget = Duration.ofSeconds(config.getLong("warmup-budget-seconds", 30L));
+    warmupMaxKeys = config.getInt("warmup-max-keys", 1000);
+    warmupIterations = config.getInt("warmup-iterations", 500);
+    revocationBatchSize = config.getInt("revocation-batch-size", 500);
+    revocationQueueSize = config.getInt("revocation-queue-size", 10);
+  }
+
+  @Override
+  public void postInit(KeycloakSessionFactory factory) {
+    sessionFactory = factory;
+    revocationExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(revocationQueueSize), r -> {
+          var thread = new Thread(r, "api-key-revocation");
+          thread.setDaemon(true);
+          return thread;
+        });
+
+    if (!warmupEnabled) {
+      warmupDone = true;
+      return;
+    }
+
+    warmupListener = event -> {
+      if (event instanceof PostMigrationEvent) {
+        startWarmup(factory);
+      }
+    };
+    factory.register(warmupListener);
+  }
+
+  private void startWarmup(KeycloakSessionFactory factory) {
+    var warmup = new ApiKeyWarmup(factory, warmupBudget, warmupMaxKeys, warmupIterations);
+    warmupDeadline = System.nanoTime() + warmupBudget.toNanos();
+    var thread = new Thread(() -> {
+      try {
+        warmup.run();
+      } catch (RuntimeException e) {
+        logger.warn("API key warm-up failed, continuing without it", e);
+      } finally {
+        warmupDone = true;
+      }
+    }, "api-key-warmup");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public void close() {
+    if (warmupListener != null) {
+      sessionFactory.unregister(warmupListener);
+    }
+    if (revocationExecutor != null) {
+      revocationExecutor.shutdownNow();
+    }
+    cache.clear();
+  }
+
+  /**
+   * Queues a bulk revocation of every API key matching the given criteria.
+   *
+   * <p>
+   * The initial status is published in its own transaction before the job is queued, rather than through the
+   * caller's session, so it cannot be committed after, and overwrite, the statuses the job itself publishes.
+   *
+   * @param criteria the resolved criteria selecting the keys to revoke
+   * @return the initial status of the queued job
+   * @throws RejectedExecutionException if the revocation queue is full
+   */
+  public ApiKeyRevocationStatus submitRevocation(ApiKeyRevocationJob.Criteria criteria) {
+    var job = new ApiKeyRevocationJob(sessionFactory, cache, criteria, revocationBatchSize);
+    KeycloakModelUtils.runJobInTransaction(sessionFactory, job::publishStatus);
+    try {
+      revocationExecutor.execute(job);
+    } catch (RejectedExecutionException e) {
+      KeycloakModelUtils.runJobInTransaction(sessionFactory, job::removeStatus);
+      throw e;
+    }
+    return job.getStatus();
+  }
+
+  /**
+   * Looks up the progress of a bulk revocation job of the session's realm, accepted by any node of the cluster.
+   *
+   * @param session the current Keycloak session
+   * @param jobId   the identifier of the job
+   * @return the job's last published status, or an empty {@code Optional} if it is unknown or belongs to another
+   *         realm
+   */
+  public Optional<ApiKeyRevocationStatus> getRevocationStatus(KeycloakSession session, String jobId) {
+    return ApiKeyRevocationJob.readStatus(session, jobId);
+  }
+
+  /**
+   * @return {@code true} once the startup warm-up has completed, failed, run out of its time budget or been skipped
+   */
+  public boolean isReady() {
+    if (warmupDone) {
+      return true;
+    }
+
+    var deadline = warmupDeadline;
+    return deadline != null && System.nanoTime() - deadline >= 0;
   }
 
   @Override
@@ -2,16 +2,18 @@ package org.retro.uepm.keycloak.providers;
 
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
-import lombok.RequiredArgsConstructor;
 import org.jboss.logging.Logger;
+import org.keycloak.credential.CredentialModel;
 import org.keycloak.credential.hash.PasswordHashProvider;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.ModelException;
 import org.keycloak.models.PasswordPolicy;
-import org.keycloak.models.credential.PasswordCredentialModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.credential.dto.PasswordSecretData;
 import org.keycloak.provider.Provider;
 import org.keycloak.provider.ProviderFactory;
 import org.keycloak.util.JsonSerialization;
+import org.retro.uepm.keycloak.cache.ApiKeyValidationCache;
 import org.retro.uepm.keycloak.credentials.ApiKeyCredentialModel;
 import org.retro.uepm.keycloak.credentials.ApiKeyCredentialsData;
 
@@ -35,11 +37,16 @@ import static org.jboss.logging.Logger.getLogger;
  * This class contains methods for decoding API keys, accessing user credentials, and verifying hashed keys
  * using the appropriate password hashing provider.
  */
-@RequiredArgsConstructor
 public class ApiKeyCredentialReader {
   private static final Logger logger = getLogger(ApiKeyCredentialReader.class);
 
   private final KeycloakSession session;
+  private final ApiKeyValidationCache cache;
+
+  public ApiKeyCredentialReader(KeycloakSession session) {
+    this.session = session;
+    this.cache = ApiKeyCredentialProviderFactory.getValidationCache(session);
+  }
 
   /**
    * Validates the provided API key by decoding and verifying its components against stored credentials.
@@ -53,45 +60,100 @@ public class ApiKeyCredentialReader {
    * @throws ModelException if an error occurs while reading the credential data
    */
   public Optional<UUID> validateKey(String apiKey) {
-    var keyBytes = Base64.getDecoder().decode(apiKey);
-    var buffer = ByteBuffer.wrap(keyBytes);
-    var userUpper = buffer.getLong();
-    var userLower = buffer.getLong();
-    var userId = new UUID(userUpper, userLower);
+    var decoded = decodeKey(apiKey);
+    return findCredential(session.getContext().getRealm(), decoded.userId().toString(), decoded.keyId().toString())
+        .filter(stored -> verifySecret(decoded.secret(), stored))
+        .map(stored -> decoded.keyId());
+  }
 
-    var user = session.users().getUserById(session.getContext().getRealm(), userId.toString());
+  /**
+   * Looks up an unexpired API key credential of a user, going through the validation cache and Keycloak's user and
+   * credential storage.
+   *
+   * @param realm  the realm the user belongs to
+   * @param userId the id of the user the key was issued to
+   * @param keyId  the id of the stored credential
+   * @return the stored credential and its parsed data, or an empty {@code Optional} if the user or credential does
+   *         not exist or the key has expired
+   * @throws ModelException if an error occurs while reading the credential data
+   */
+  Optional<StoredKey> findCredential(RealmModel realm, String userId, String keyId) {
+    var cached = cache.get(keyId);
+    if (cached.isPresent()) {
+      var entry = cached.get();
+      if (!Objects.equals(entry.userId(), userId) || OffsetDateTime.now().isAfter(entry.credentialData().expiresOn())) {
+        return Optional.empty();
+      }
+    }
+
+    var user = session.users().getUserById(realm, userId);
     if (user == null) {
       return Optional.empty();
     }
 
-    var keyUpper = buffer.getLong();
-    var keyLower = buffer.getLong();
-    var keyId = new UUID(keyUpper, keyLower);
-    var key = user.credentialManager().getStoredCredentialById(keyId.toString());
+    var key = user.credentialManager().getStoredCredentialById(keyId);
     if (key == null || !Objects.equals(key.getType(), ApiKeyCredentialModel.TYPE)) {
+      cache.invalidate(keyId);
       return Optional.empty();
     }
 
     try {
-      var credentialData = JsonSerialization.readValue(key.getCredentialData(), ApiKeyCredentialsData.class);
-      var now = OffsetDateTime.now();
-      if (now.isAfter(credentialData.expiresOn())) {
+      ApiKeyCredentialsData credentialData;
+      if (cached.isPresent()) {
+        credentialData = cached.get().credentialData();
+      } else {
+        credentialData = JsonSerialization.readValue(key.getCredentialData(), ApiKeyCredentialsData.class);
+        cache.put(keyId, userId, credentialData);
+      }
+
+      if (OffsetDateTime.now().isAfter(credentialData.expiresOn())) {
         return Optional.empty();
       }
 
-      var keySecretBytes = readRemaining(buffer);
-      var encodedKey = Base64.getEncoder().encodeToString(keySecretBytes);
-      var hash = getHashProvider(credentialData.hashAlgorithm());
+      return Optional.of(new StoredKey(key, credentialData));
+    } catch (IOException e) {
+      throw new ModelException("Could not read credential data", e);
+    }
+  }
+
+  /**
+   * Verifies the secret component of an API key against the hash stored with its credential.
+   *
+   * @param secret the secret component of the decoded key
+   * @param stored the stored credential the key refers to
+   * @return true if the secret matches the stored hash; false otherwise
+   * @throws ModelException if an error occurs while reading the secret data
+   */
+  boolean verifySecret(byte[] secret, StoredKey stored) {
+    try {
+      var encodedKey = Base64.getEncoder().encodeToString(secret);
+      var hash = getHashProvider(stored.credentialData().hashAlgorithm());
 
-      var apiKeyData = ApiKeyCredentialModel.createFromCredentialModel(key);
-      var passwordCredentialModel = apiKeyData.toPasswordCredentialModel();
-      return Optional.of(keyId)
-          .filter(i -> hash.verify(encodedKey, passwordCredentialModel));
+      var secretData = JsonSerialization.readValue(stored.credential().getSecretData(), PasswordSecretData.class);
+      var passwordCredentialModel = ApiKeyCredentialModel.createFromValues(stored.credentialData(), secretData)
+          .toPasswordCredentialModel();
+      return hash.verify(encodedKey, passwordCredentialModel);
     } catch (IOException e) {
       throw new ModelException("Could not read credential data", e);
     }
   }
 
+  /**
+   * Splits a Base64-encoded API key into the user id, the credential id and the secret component.
+   *
+   * @param apiKey the Base64-encoded string representing the API key
+   * @return the decoded components of the key
+   */
+  static DecodedKey decodeKey(String apiKey) {
+    var keyBytes = Base64.getDecoder().decode(apiKey);
+    var buffer = ByteBuffer.wrap(keyBytes);
+    var userUpper = buffer.getLong();
+    var userLower = buffer.getLong();
+    var keyUpper = buffer.getLong();
+    var keyLower = buffer.getLong();
+    return new DecodedKey(new UUID(userUpper, userLower), new UUID(keyUpper, keyLower), readRemaining(buffer));
+  }
+
   private static byte[] readRemaining(ByteBuffer buffer) {
     var remaining = buffer.remaining(); // Get the number of remaining bytes
     var byteArray = new byte[remaining]; // Create a byte array of the appropriate size
@@ -111,4 +173,23 @@ public class ApiKeyCredentialReader {
 
     return session.getProvider(PasswordHashProvider.class);
   }
+
+  /**
+   * The components of a decoded API key.
+   *
+   * @param userId the id of the user the key was issued to
+   * @param keyId  the id of the stored credential
+   * @param secret the secret component that is verified against the stored hash
+   */
+  record DecodedKey(UUID userId, UUID keyId, byte[] secret) {
+  }
+
+  /**
+   * A stored API key credential together with its parsed credential data.
+   *
+   * @param credential     the stored credential, including its secret data
+   * @param credentialData the parsed credential data
+   */
+  record StoredKey(CredentialModel credential, ApiKeyCredentialsData credentialData) {
+  }
 }
@@ -0,0 +1,251 @@
+package org.retro.uepm.keycloak.providers;
+
+import jakarta.persistence.EntityManager;
+import org.jboss.logging.Logger;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.cache.UserCache;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.storage.adapter.InMemoryUserAdapter;
+import org.keycloak.util.JsonSerialization;
+import org.retro.uepm.keycloak.cache.ApiKeyValidationCache;
+import org.retro.uepm.keycloak.credentials.ApiKeyCredentialModel;
+import org.retro.uepm.keycloak.credentials.ApiKeyCredentialsData;
+import org.retro.uepm.keycloak.model.ApiKeyRevocationStatus;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.jboss.logging.Logger.getLogger;
+
+/**
+ * Revokes every API key of a realm that matches a set of {@link Criteria}.
+ * <p>
+ * The job walks the matching {@code api-key} credentials in id order and processes them in batches, each in its own
+ * transaction. A batch is selected with a single projection query and removed with a single bulk delete, so no
+ * credential or user models are loaded per row. Since the bulk delete bypasses Keycloak's user cache, every user
+ * touched by a batch is evicted from it in the same transaction, which propagates the invalidation to all nodes. The
+ * eviction is driven by a projection of the users' identifying attributes rather than by loading their models. The
+ * revoked ids are then dropped from the local {@link ApiKeyValidationCache}; other nodes drop their entries the next
+ * time the missing credential is looked up.
+ * <p>
+ * Progress is published after every batch to Keycloak's cluster-wide single-use object store, so it can be read
+ * through {@link #readStatus} on any node, not only the one running the job. Statuses expire an hour after their
+ * last update.
+ */
+public class ApiKeyRevocationJob implements Runnable {
+  private static final Logger logger = getLogger(ApiKeyRevocationJob.class);
+  private static final String STATUS_KEY_PREFIX = "api-key-revocation:";
+  private static final Duration STATUS_LIFESPAN = Duration.ofHours(1);
+
+  private final String id = UUID.randomUUID().toString();
+  private final KeycloakSessionFactory sessionFactory;
+  private final ApiKeyValidationCache cache;
+  private final Criteria criteria;
+  private final int batchSize;
+  private final OffsetDateTime startedAt = OffsetDateTime.now();
+
+  private volatile ApiKeyRevocationStatus.State state = ApiKeyRevocationStatus.State.PENDING;
+  private volatile long scanned;
+  private volatile long revoked;
+  private volatile long batches;
+  private volatile OffsetDateTime finishedAt;
+  private volatile String error;
+
+  ApiKeyRevocationJob(KeycloakSessionFactory sessionFactory, ApiKeyValidationCache cache, Criteria criteria,
+                      int batchSize) {
+    this.sessionFactory = sessionFactory;
+    this.cache = cache;
+    this.criteria = criteria;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @return a snapshot of the job's current progress
+   */
+  public ApiKeyRevocationStatus getStatus() {
+    return new ApiKeyRevocationStatus(id, criteria.realmId(), state, scanned, revoked, batches, startedAt, finishedAt,
+        error);
+  }
+
+  /**
+   * Reads the last published status of a revocation job of the session's realm, regardless of which node runs it.
+   *
+   * @param session the current Keycloak session
+   * @param jobId   the identifier of the job
+   * @return the job's last published status, or an empty {@code Optional} if it is unknown, has expired or belongs
+   *         to another realm
+   */
+  static Optional<ApiKeyRevocationStatus> readStatus(KeycloakSession session, String jobId) {
+    var realmId = session.getContext().getRealm().getId();
+    return Optional.ofNullable(session.singleUseObjects().get(STATUS_KEY_PREFIX + jobId))
+        .map(ApiKeyRevocationStatus::fromNotes)
+        .filter(status -> Objects.equals(status.realmId(), realmId));
+  }
+
+  void publishStatus(KeycloakSession session) {
+    session.singleUseObjects().put(STATUS_KEY_PREFIX + id, STATUS_LIFESPAN.toSeconds(), getStatus().toNotes());
+  }
+
+  void removeStatus(KeycloakSession session) {
+    session.singleUseObjects().remove(STATUS_KEY_PREFIX + id);
+  }
+
+  private void publishStatus() {
+    try {
+      KeycloakModelUtils.runJobInTransaction(sessionFactory, this::publishStatus);
+    } catch (RuntimeException e) {
+      logger.warnf(e, "Could not publish the status of revocation job %s", id);
+    }
+  }
+
+  @Override
+  public void run() {
+    state = ApiKeyRevocationStatus.State.RUNNING;
+    publishStatus();
+    try {
+      var afterId = "";
+      while (true) {
+        var lastId = afterId;
+        var batch = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory,
+            session -> revokeBatch(session, lastId));
+
+        cache.invalidateAll(batch.revokedIds());
+        scanned += batch.scanned();
+        revoked += batch.revokedIds().size();
+        batches++;
+        logger.debugf("Revocation job %s: %d of %d scanned credentials revoked after %d batches", id, revoked,
+            scanned, batches);
+        publishStatus();
+
+        if (batch.scanned() < batchSize) {
+          break;
+        }
+        afterId = batch.lastId();
+      }
+
+      state = ApiKeyRevocationStatus.State.COMPLETED;
+      logger.infof("Revocation job %s revoked %d API keys in realm %s", id, revoked, criteria.realmId());
+    } catch (RuntimeException e) {
+      error = "Revocation failed, see the server log for details";
+      state = ApiKeyRevocationStatus.State.FAILED;
+      logger.errorf(e, "Revocation job %s failed after revoking %d API keys", id, revoked);
+    } finally {
+      finishedAt = OffsetDateTime.now();
+      publishStatus();
+    }
+  }
+
+  private Batch revokeBatch(KeycloakSession session, String afterId) {
+    var jpql = new StringBuilder("select c.id, c.user.id, c.credentialData from CredentialEntity c "
+        + "where c.type = :type and c.user.realmId = :realmId and c.id > :afterId");
+    if (criteria.userId() != null) {
+      jpql.append(" and c.user.id = :userId");
+    }
+    if (criteria.issuedAfter() != null) {
+      jpql.append(" and c.createdDate >= :issuedAfter");
+    }
+    if (criteria.issuedBefore() != null) {
+      jpql.append(" and c.createdDate < :issuedBefore");
+    }
+    jpql.append(" order by c.id");
+
+    var em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+    var query = em.createQuery(jpql.toString(), Object[].class)
+        .setParameter("type", ApiKeyCredentialModel.TYPE)
+        .setParameter("realmId", criteria.realmId())
+        .setParameter("afterId", afterId)
+        .setMaxResults(batchSize);
+    if (criteria.userId() != null) {
+      query.setParameter("userId", criteria.userId());
+    }
+    if (criteria.issuedAfter() != null) {
+      query.setParameter("issuedAfter", criteria.issuedAfter());
+    }
+    if (criteria.issuedBefore() != null) {
+      query.setParameter("issuedBefore", criteria.issuedBefore());
+    }
+    var rows = query.getResultList();
+
+    var revokedIds = new ArrayList<String>();
+    var userIds = new HashSet<String>();
+    for (var row : rows) {
+      if (matchesExpiry((String) row[2])) {
+        revokedIds.add((String) row[0]);
+        userIds.add((String) row[1]);
+      }
+    }
+
+    if (!revokedIds.isEmpty()) {
+      em.createQuery("delete from CredentialEntity c where c.id in :ids")
+          .setParameter("ids", revokedIds)
+          .executeUpdate();
+      evictUsers(session, em, userIds);
+    }
+
+    var lastId = rows.isEmpty() ? afterId : (String) rows.get(rows.size() - 1)[0];
+    return new Batch(rows.size(), lastId, revokedIds);
+  }
+
+  private boolean matchesExpiry(String credentialData) {
+    if (criteria.expiresAfter() == null && criteria.expiresBefore() == null) {
+      return true;
+    }
+
+    try {
+      var expiresOn = JsonSerialization.readValue(credentialData, ApiKeyCredentialsData.class).expiresOn();
+      return (criteria.expiresAfter() == null || !expiresOn.isBefore(criteria.expiresAfter()))
+          && (criteria.expiresBefore() == null || expiresOn.isBefore(criteria.expiresBefore()));
+    } catch (IOException e) {
+      logger.warnf(e, "Revocation job %s could not read credential data, skipping", id);
+      return false;
+    }
+  }
+
+  private void evictUsers(KeycloakSession session, EntityManager em, Set<String> userIds) {
+    var userCache = session.getProvider(UserCache.class);
+    if (userCache == null) {
+      return;
+    }
+
+    // The cache invalidation only needs a user's identifying attributes, so project them instead of loading models.
+    var realm = session.realms().getRealm(criteria.realmId());
+    var rows = em.createQuery("select u.id, u.username, u.email, u.federationLink from UserEntity u "
+            + "where u.id in :ids", Object[].class)
+        .setParameter("ids", userIds)
+        .getResultList();
+    for (var row : rows) {
+      var user = new InMemoryUserAdapter(session, realm, (String) row[0]);
+      user.setUsername((String) row[1]);
+      user.setEmail((String) row[2]);
+      user.setFederationLink((String) row[3]);
+      userCache.evict(realm, user);
+    }
+  }
+
+  /**
+   * The resolved criteria of a revocation job. Any criterion left {@code null} does not narrow the selection.
+   *
+   * @param realmId       the id of the realm whose keys are revoked
+   * @param userId        the id of the user whose keys are revoked
+   * @param issuedAfter   the inclusive lower bound of the creation timestamp, in epoch milliseconds
+   * @param issuedBefore  the exclusive upper bound of the creation timestamp, in epoch milliseconds
+   * @param expiresAfter  the inclusive lower bound of the expiration datetime
+   * @param expiresBefore the exclusive upper bound of the expiration datetime
+   */
+  public record Criteria(String realmId, String userId, Long issuedAfter, Long issuedBefore,
+                         OffsetDateTime expiresAfter, OffsetDateTime expiresBefore) {
+  }
+
+  private record Batch(int scanned, String lastId, List<String> revokedIds) {
+  }
+}
@@ -0,0 +1,215 @@
+package org.retro.uepm.keycloak.providers;
+
+import lombok.RequiredArgsConstructor;
+import org.jboss.logging.Logger;
+import org.keycloak.common.util.SecretGenerator;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.credential.hash.PasswordHashProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.util.JsonSerialization;
+import org.retro.uepm.keycloak.credentials.ApiKeyCredentialModel;
+import org.retro.uepm.keycloak.credentials.ApiKeyCredentialsData;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.jboss.logging.Logger.getLogger;
+
+/**
+ * Warms up the API key validation path of a freshly started node.
+ * <p>
+ * The warm-up runs in three phases, all bounded by a shared time budget:
+ * <p>
+ * - Credential preload: {@code api-key} credentials are paged through, most recently issued first, until
+ * {@code maxKeys} unexpired ones have been looked up through {@link ApiKeyCredentialReader#findCredential}. This
+ * loads their users and stored credentials into Keycloak's user cache and their parsed metadata into the
+ * {@link org.retro.uepm.keycloak.cache.ApiKeyValidationCache}. Expired credentials are skipped without being loaded.
+ * Credentials do not record when they were last used, so the issue date is used as the recency signal.
+ * - Lookup iterations: the preloaded credentials are looked up again through
+ * {@link ApiKeyCredentialReader#findCredential}, in short sessions that each touch a key at most once. Like a real
+ * request, every lookup therefore goes through Keycloak's shared user cache rather than a session-local adapter.
+ * - Synthetic iterations: a throwaway key is hashed once per hash algorithm in use and then repeatedly decoded and
+ * verified through {@link ApiKeyCredentialReader#verifySecret}, so the hash providers are initialised.
+ * <p>
+ * Together these get the validation path JIT-compiled before real traffic arrives.
+ */
+@RequiredArgsConstructor
+class ApiKeyWarmup {
+  private static final Logger logger = getLogger(ApiKeyWarmup.class);
+  private static final int PAGE_SIZE = 200;
+  private static final int LOOKUP_CHUNK_SIZE = 50;
+
+  private final KeycloakSessionFactory sessionFactory;
+  private final Duration budget;
+  private final int maxKeys;
+  private final int iterations;
+
+  /**
+   * Runs the warm-up, returning once both phases are complete or the time budget is exhausted.
+   */
+  void run() {
+    var started = System.nanoTime();
+    var deadline = started + budget.toNanos();
+
+    var algorithms = new LinkedHashSet<String>();
+    var preloaded = new ArrayList<PreloadedKey>();
+    preloadCredentials(deadline, algorithms, preloaded);
+    var lookups = runLookupIterations(deadline, preloaded);
+    var verified = runSyntheticIterations(deadline, algorithms);
+
+    logger.infof("API key warm-up finished in %d ms: %d credentials preloaded, %d lookups, %d synthetic "
+            + "verifications", Duration.ofNanos(System.nanoTime() - started).toMillis(), preloaded.size(), lookups,
+        verified);
+  }
+
+  private void preloadCredentials(long deadline, Set<String> algorithms, List<PreloadedKey> preloaded) {
+    var offset = 0;
+    while (preloaded.size() < maxKeys && System.nanoTime() < deadline) {
+      var first = offset;
+      var pageSize = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory,
+          session -> preloadPage(session, first, deadline, algorithms, preloaded));
+      if (pageSize < PAGE_SIZE) {
+        return;
+      }
+      offset += pageSize;
+    }
+
+    if (preloaded.size() < maxKeys) {
+      logger.warnf("API key warm-up budget exhausted after preloading %d credentials", preloaded.size());
+    }
+  }
+
+  private int preloadPage(KeycloakSession session, int first, long deadline, Set<String> algorithms,
+                          List<PreloadedKey> preloaded) {
+    var rows = session.getProvider(JpaConnectionProvider.class).getEntityManager()
+        .createQuery("select c.id, c.user.id, c.user.realmId, c.credentialData from CredentialEntity c "
+            + "where c.type = :type order by c.createdDate desc, c.id", Object[].class)
+        .setParameter("type", ApiKeyCredentialModel.TYPE)
+        .setFirstResult(first)
+        .setMaxResults(PAGE_SIZE)
+        .getResultList();
+
+    var reader = new ApiKeyCredentialReader(session);
+    var now = OffsetDateTime.now();
+    for (var row : rows) {
+      if (preloaded.size() >= maxKeys || System.nanoTime() > deadline) {
+        break;
+      }
+
+      var key = new PreloadedKey((String) row[2], (String) row[1], (String) row[0]);
+      try {
+        var credentialData = JsonSerialization.readValue((String) row[3], ApiKeyCredentialsData.class);
+        if (now.isAfter(credentialData.expiresOn())) {
+          continue;
+        }
+      } catch (IOException e) {
+        logger.debugf(e, "Skipping unreadable API key credential %s during warm-up", key.keyId());
+        continue;
+      }
+
+      var realm = session.realms().getRealm(key.realmId());
+      if (realm == null) {
+        continue;
+      }
+
+      reader.findCredential(realm, key.userId(), key.keyId()).ifPresent(stored -> {
+        algorithms.add(stored.credentialData().hashAlgorithm());
+        preloaded.add(key);
+      });
+    }
+
+    return rows.size();
+  }
+
+  private int runLookupIterations(long deadline, List<PreloadedKey> preloaded) {
+    if (preloaded.isEmpty()) {
+      return 0;
+    }
+
+    var lookups = 0;
+    while (lookups < iterations && System.nanoTime() < deadline) {
+      var start = lookups;
+      var chunkSize = Math.min(Math.min(LOOKUP_CHUNK_SIZE, preloaded.size()), iterations - lookups);
+      lookups += KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory,
+          session -> runLookupChunk(session, preloaded, start, chunkSize, deadline));
+    }
+
+    return lookups;
+  }
+
+  private int runLookupChunk(KeycloakSession session, List<PreloadedKey> preloaded, int start, int chunkSize,
+                             long deadline) {
+    var reader = new ApiKeyCredentialReader(session);
+    var done = 0;
+    while (done < chunkSize && System.nanoTime() < deadline) {
+      var key = preloaded.get((start + done) % preloaded.size());
+      var realm = session.realms().getRealm(key.realmId());
+      if (realm != null) {
+        reader.findCredential(realm, key.userId(), key.keyId());
+      }
+      done++;
+    }
+
+    return done;
+  }
+
+  private int runSyntheticIterations(long deadline, Set<String> algorithms) {
+    if (algorithms.isEmpty()) {
+      algorithms.add(null);
+    }
+
+    var perAlgorithm = Math.max(1, iterations / algorithms.size());
+    var verified = 0;
+    for (var algorithm : algorithms) {
+      verified += KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory,
+          session -> runSyntheticIterations(session, algorithm, perAlgorithm, deadline));
+    }
+
+    return verified;
+  }
+
+  private int runSyntheticIterations(KeycloakSession session, String algorithm, int count, long deadline) {
+    var hash = algorithm != null
+        ? session.getProvider(PasswordHashProvider.class, algorithm)
+        : session.getProvider(PasswordHashProvider.class);
+    if (hash == null) {
+      logger.warnv("PasswordHashProvider {0} not found, skipping warm-up for it", algorithm);
+      return 0;
+    }
+
+    var privateComponent = SecretGenerator.getInstance().randomBytes(32);
+    var encodedSecret = Base64.getEncoder().encodeToString(privateComponent);
+    var apiKeyModel = ApiKeyCredentialModel.createFromValues(hash.encodedCredential(encodedSecret, -1),
+        OffsetDateTime.now().plusDays(1));
+    var synthetic = new ApiKeyCredentialReader.StoredKey(apiKeyModel, apiKeyModel.getApiKeyCredentialsData());
+    var syntheticKey = Base64.getEncoder().encodeToString(
+        ApiKeyCredentialProvider.combineKey(UUID.randomUUID(), UUID.randomUUID(), privateComponent));
+
+    var reader = new ApiKeyCredentialReader(session);
+    var verified = 0;
+    while (verified < count && System.nanoTime() < deadline) {
+      var decoded = ApiKeyCredentialReader.decodeKey(syntheticKey);
+
+      if (!reader.verifySecret(decoded.secret(), synthetic)) {
+        logger.warnv("Synthetic API key did not verify with PasswordHashProvider {0}", algorithm);
+        break;
+      }
+
+      verified++;
+    }
+
+    return verified;
+  }
+
+  private record PreloadedKey(String realmId, String userId, String keyId) {
+  }
+}
@@ -7,14 +7,24 @@ import jakarta.ws.rs.ext.Provider;
 import org.eclipse.microprofile.openapi.annotations.parameters.RequestBody;
 import org.jboss.logging.Logger;
 import org.keycloak.credential.CredentialProvider;
+import org.keycloak.models.AdminRoles;
+import org.keycloak.models.Constants;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.UserModel;
+import org.keycloak.services.managers.AppAuthManager;
 import org.retro.uepm.keycloak.model.ApiKeyRequest;
+import org.retro.uepm.keycloak.model.ApiKeyRevocationRequest;
+import org.retro.uepm.keycloak.model.ApiKeyRevocationStatus;
 import org.retro.uepm.keycloak.providers.ApiKeyCredentialProvider;
+import org.retro.uepm.keycloak.providers.ApiKeyCredentialProviderFactory;
 import org.retro.uepm.keycloak.providers.ApiKeyCredentialReader;
+import org.retro.uepm.keycloak.providers.ApiKeyRevocationJob;
 
 import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.TemporalAmount;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.jboss.logging.Logger.getLogger;
 
@@ -32,6 +42,15 @@ import static org.jboss.logging.Logger.getLogger;
  * Endpoints:
  * - This resource exposes a GET endpoint that accepts an API key as a query
  * parameter and checks its validity.
+ * - A GET endpoint at {@code /ready} reports whether the node has finished its
+ * startup warm-up, for use as a readiness probe. Keycloak's own
+ * {@code /health/ready} does not take the warm-up into account, so probes
+ * have to target this endpoint instead.
+ * - A POST endpoint at {@code /revocations} starts a bulk revocation of the
+ * keys matching a user, an issue window and/or an expiry window, and a GET
+ * endpoint at {@code /revocations/{jobId}} reports its progress. Both require
+ * a bearer token of a user holding the realm-management {@code manage-users}
+ * role, and every started revocation is logged with the caller and criteria.
  * <p>
  * Functionality:
  * - Validates an API key by searching for users in the Keycloak database who
@@ -71,6 +90,21 @@ public class ApiKeyResource {
             .build());
   }
 
+  /**
+   * Reports whether this node has finished warming up its API key validation state.
+   *
+   * @return 200 OK once the startup warm-up is done, otherwise 503 Service Unavailable
+   */
+  @GET
+  @Path("ready")
+  @Produces("application/json")
+  public Response checkReady() {
+    var ready = ApiKeyCredentialProviderFactory.getFactory(session).isReady();
+    return Response.status(ready ? 200 : 503)
+        .type(MediaType.APPLICATION_JSON)
+        .build();
+  }
+
   @POST
   @Produces("application/json")
   public Response createApiKey(@RequestBody ApiKeyRequest apiKeyRequest) {
@@ -95,4 +129,111 @@ public class ApiKeyResource {
             .type(MediaType.APPLICATION_JSON)
             .build());
   }
+
+  /**
+   * Starts a bulk revocation of the API keys in the current realm that match the given criteria.
+   *
+   * @param revocationRequest the criteria selecting the keys to revoke
+   * @return 202 Accepted with the initial job status, 400 Bad Request if the criteria are missing or malformed,
+   *         401 Unauthorized without a valid bearer token, 403 Forbidden if the caller lacks the realm-management
+   *         {@code manage-users} role, 404 Not Found if the given user does not exist, or 429 Too Many Requests if
+   *         too many revocation jobs are already queued
+   */
+  @POST
+  @Path("revocations")
+  @Produces("application/json")
+  public Response revokeApiKeys(@RequestBody ApiKeyRevocationRequest revocationRequest) {
+    var auth = new AppAuthManager.BearerTokenAuthenticator(session).authenticate();
+    if (auth == null) {
+      return Response.status(401).type(MediaType.APPLICATION_JSON).build();
+    }
+    if (!canManageUsers(auth.user())) {
+      logger.warnf("User %s is not allowed to revoke API keys", auth.user().getUsername());
+      return Response.status(403).type(MediaType.APPLICATION_JSON).build();
+    }
+
+    if (revocationRequest == null || !(revocationRequest.hasCriteria() || revocationRequest.allInRealm())) {
+      return Response.status(400).type(MediaType.APPLICATION_JSON).build();
+    }
+
+    var realm = session.getContext().getRealm();
+    String userId = null;
+    if (revocationRequest.username() != null) {
+      var user = session.users().getUserByUsername(realm, revocationRequest.username());
+      if (user == null) {
+        logger.warnf("No such user: %s", revocationRequest.username());
+        return Response.status(404).type(MediaType.APPLICATION_JSON).build();
+      }
+      userId = user.getId();
+    }
+
+    ApiKeyRevocationJob.Criteria criteria;
+    try {
+      criteria = new ApiKeyRevocationJob.Criteria(realm.getId(), userId,
+          toEpochMillis(revocationRequest.issuedAfter()), toEpochMillis(revocationRequest.issuedBefore()),
+          parseDateTime(revocationRequest.expiresAfter()), parseDateTime(revocationRequest.expiresBefore()));
+    } catch (DateTimeParseException e) {
+      logger.warnf("Invalid revocation window: %s", e.getParsedString());
+      return Response.status(400).type(MediaType.APPLICATION_JSON).build();
+    }
+
+    ApiKeyRevocationStatus status;
+    try {
+      status = ApiKeyCredentialProviderFactory.getFactory(session).submitRevocation(criteria);
+    } catch (RejectedExecutionException e) {
+      logger.warnf("Revocation queue is full, rejecting request from user %s", auth.user().getUsername());
+      return Response.status(429).type(MediaType.APPLICATION_JSON).build();
+    }
+
+    logger.infof("User %s (%s) started API key revocation job %s in realm %s with %s", auth.user().getUsername(),
+        auth.user().getId(), status.id(), realm.getName(), criteria);
+    return Response.status(202)
+        .type(MediaType.APPLICATION_JSON)
+        .entity(status)
+        .build();
+  }
+
+  /**
+   * Reports the progress of a bulk revocation job started on any node of the cluster.
+   *
+   * @param jobId the identifier returned when the job was started
+   * @return 200 OK with the job status, 401 Unauthorized without a valid bearer token, 403 Forbidden if the caller
+   *         lacks the realm-management {@code manage-users} role, or 404 Not Found if the job is unknown or was
+   *         started in another realm
+   */
+  @GET
+  @Path("revocations/{jobId}")
+  @Produces("application/json")
+  public Response getRevocationStatus(@PathParam("jobId") String jobId) {
+    var auth = new AppAuthManager.BearerTokenAuthenticator(session).authenticate();
+    if (auth == null) {
+      return Response.status(401).type(MediaType.APPLICATION_JSON).build();
+    }
+    if (!canManageUsers(auth.user())) {
+      return Response.status(403).type(MediaType.APPLICATION_JSON).build();
+    }
+
+    return ApiKeyCredentialProviderFactory.getFactory(session).getRevocationStatus(session, jobId)
+        .map(status -> Response.ok()
+            .type(MediaType.APPLICATION_JSON)
+            .entity(status)
+            .build())
+        .orElseGet(() -> Response.status(404)
+            .type(MediaType.APPLICATION_JSON)
+            .build());
+  }
+
+  private boolean canManageUsers(UserModel user) {
+    var realmManagement = session.getContext().getRealm().getClientByClientId(Constants.REALM_MANAGEMENT_CLIENT_ID);
+    var manageUsers = realmManagement != null ? realmManagement.getRole(AdminRoles.MANAGE_USERS) : null;
+    return manageUsers != null && user.hasRole(manageUsers);
+  }
+
+  private static OffsetDateTime parseDateTime(String value) {
+    return value != null ? OffsetDateTime.parse(value) : null;
+  }
+
+  private static Long toEpochMillis(String value) {
+    return value != null ? OffsetDateTime.parse(value).toInstant().toEpochMilli() : null;
+  }
 }